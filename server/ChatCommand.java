@@ -0,0 +1,25 @@
+package server;
+
+/**
+ * ChatCommand est l'interface des plugins de commandes du pipeline.
+ * Une commande est un message client commençant par '/' (ex: "/msg Bob salut").
+ *
+ * La commande reçoit le message et peut :
+ * - répondre à l'expéditeur avec ChatMessage.replyToSender()
+ * - changer le texte et les destinataires du message (ex: message privé)
+ * - abandonner le message avec ChatMessage.drop()
+ *
+ * Les commandes sont appelées depuis les threads du pipeline : elles doivent
+ * être thread-safe et éviter les opérations bloquantes.
+ */
+@FunctionalInterface
+public interface ChatCommand {
+
+    /**
+     * Exécute la commande.
+     *
+     * @param message Le message contenant la commande (modifiable)
+     * @param args Les arguments de la commande, sans le nom (éventuellement vides)
+     */
+    void execute(ChatMessage message, String args);
+}
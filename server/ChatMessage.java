@@ -0,0 +1,150 @@
+package server;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * ChatMessage représente un message qui traverse le pipeline du serveur.
+ * Chaque étape du pipeline peut lire et modifier le message :
+ * - decode : nettoie le texte et repère les commandes (ex: "/list")
+ * - command : exécute la commande éventuelle
+ * - filter : applique la chaîne de filtres (modération, enrichissement...)
+ * - route : détermine les destinataires
+ * - encode : formate le message et l'envoie aux destinataires
+ *
+ * Un message est soit un message client (préfixé par le pseudonyme de
+ * l'expéditeur lors de l'envoi), soit un message système (envoyé tel quel,
+ * ex: "Utilisateur X a quitté la conversation.").
+ *
+ * Un message n'est traité que par une seule étape à la fois, il n'a donc
+ * pas besoin d'être synchronisé.
+ */
+public class ChatMessage {
+    private final ClientHandler sender;
+    private boolean system;
+    private String text;
+    private String command;
+    private String commandArgs;
+    private Set<ClientHandler> recipients;
+    private boolean dropped;
+    private long audienceSequence;
+    private long enqueuedAt;
+
+    private ChatMessage(ClientHandler sender, String text, boolean system) {
+        this.sender = sender;
+        this.text = text;
+        this.system = system;
+    }
+
+    /**
+     * Crée un message reçu d'un client.
+     *
+     * @param sender Le ClientHandler du client qui a envoyé le message
+     * @param text Le texte brut lu sur le socket
+     * @return Le message à soumettre au pipeline
+     */
+    public static ChatMessage fromClient(ClientHandler sender, String text) {
+        return new ChatMessage(sender, text, false);
+    }
+
+    /**
+     * Crée un message système, diffusé sans préfixe et sans passer par
+     * les commandes ni les filtres.
+     *
+     * @param sender Le ClientHandler concerné (exclu de la diffusion)
+     * @param text Le texte à diffuser
+     * @return Le message à soumettre au pipeline
+     */
+    public static ChatMessage system(ClientHandler sender, String text) {
+        return new ChatMessage(sender, text, true);
+    }
+
+    public ClientHandler getSender() {
+        return sender;
+    }
+
+    public boolean isSystem() {
+        return system;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @return Le nom de la commande (sans le '/'), ou null si ce n'est pas une commande
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return Les arguments de la commande (éventuellement vides), ou null si ce n'est pas une commande
+     */
+    public String getCommandArgs() {
+        return commandArgs;
+    }
+
+    void setCommand(String command, String commandArgs) {
+        this.command = command;
+        this.commandArgs = commandArgs;
+    }
+
+    /**
+     * @return Les destinataires explicites, ou null pour une diffusion à tous sauf l'expéditeur
+     */
+    public Set<ClientHandler> getRecipients() {
+        return recipients;
+    }
+
+    public void setRecipients(Set<ClientHandler> recipients) {
+        this.recipients = recipients;
+    }
+
+    /**
+     * Transforme ce message en une réponse système adressée uniquement à l'expéditeur.
+     * Utilisé par les commandes (ex: "/list") pour répondre au client.
+     *
+     * @param reply Le texte de la réponse
+     */
+    public void replyToSender(String reply) {
+        this.text = reply;
+        this.system = true;
+        this.recipients = Collections.singleton(sender);
+    }
+
+    /**
+     * Abandonne le message : il ne sera pas transmis aux étapes suivantes.
+     */
+    public void drop() {
+        this.dropped = true;
+    }
+
+    public boolean isDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return Le numéro d'arrivée du dernier client connecté lors de la soumission :
+     *         seuls les clients arrivés jusque-là peuvent recevoir ce message
+     */
+    long getAudienceSequence() {
+        return audienceSequence;
+    }
+
+    void setAudienceSequence(long audienceSequence) {
+        this.audienceSequence = audienceSequence;
+    }
+
+    long getEnqueuedAt() {
+        return enqueuedAt;
+    }
+
+    void markEnqueued() {
+        this.enqueuedAt = System.nanoTime();
+    }
+}
@@ -6,6 +6,7 @@ import java.io.PrintWriter;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -15,14 +16,16 @@ import java.util.Set;
  * les communications entre eux via les ClientHandler.
  * 
  * Cette classe travaille en tandem avec ClientHandler :
- * - ChatServer gère la liste des clients et la diffusion des messages
+ * - ChatServer gère la liste des clients et possède le MessagePipeline
  * - ClientHandler gère la communication individuelle avec chaque client
+ * - MessagePipeline traite les messages et les envoie à leurs destinataires
  * 
  * Le flux de fonctionnement est le suivant :
  * 1. ChatServer démarre et écoute les connexions entrantes
  * 2. Pour chaque nouveau client, un ClientHandler est créé
  * 3. Le ClientHandler est ajouté à la liste des clients actifs
- * 4. Les messages sont diffusés à tous les clients via leurs ClientHandler
+ * 4. Les messages reçus par les ClientHandler sont soumis au MessagePipeline,
+ *    qui les traite (commandes, filtres) puis les diffuse aux autres clients
  * 
  * Note sur l'utilisation de 'final' :
  * - Les attributs marqués 'final' ne peuvent pas être réassignés après leur initialisation
@@ -47,6 +50,12 @@ public class ChatServer {
     private final int port;
     private ServerSocket serverSocket;
 
+    /** Pipeline qui traite et diffuse les messages des clients. */
+    private final MessagePipeline pipeline;
+
+    /** Numéro d'arrivée du dernier client ajouté (voir addClient). */
+    private long joinSequence;
+
 
     /**
      * Constructeur du ChatServer
@@ -55,6 +64,60 @@ public class ChatServer {
     public ChatServer(int port) {
         this.port = port;
         this.clientHandlers = new HashSet<>();
+        this.pipeline = new MessagePipeline(this);
+        registerDefaultCommands();
+    }
+
+    /**
+     * Enregistre les commandes disponibles pour les clients :
+     * - /list : affiche la liste des participants
+     * - /msg pseudo message : envoie un message privé à un participant
+     */
+    private void registerDefaultCommands() {
+        pipeline.registerCommand("list", (message, args) -> message.replyToSender(getParticipantsList()));
+        pipeline.registerCommand("msg", (message, args) -> {
+            String[] parts = args.trim().split("\\s+", 2);
+            if (parts.length < 2) {
+                message.replyToSender("Usage : /msg <pseudo> <message>");
+                return;
+            }
+            ClientHandler target = findClient(parts[0]);
+            if (target == null) {
+                message.replyToSender("Utilisateur " + parts[0] + " introuvable.");
+                return;
+            }
+            message.setText("(privé) " + parts[1]);
+            message.setRecipients(Collections.singleton(target));
+        });
+    }
+
+    /**
+     * Retourne le pipeline de messages, pour y enregistrer des commandes ou des filtres.
+     * 
+     * @return Le MessagePipeline du serveur
+     */
+    public MessagePipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Soumet un message au pipeline pour traitement et diffusion.
+     * Bloque si le pipeline est saturé.
+     * 
+     * Le message retient le numéro d'arrivée du dernier client connecté : les
+     * clients arrivés après sa soumission ne le recevront pas, même s'il est
+     * encore dans le pipeline au moment de leur connexion.
+     * 
+     * @param message Le message à soumettre
+     * @throws InterruptedException Si le thread est interrompu pendant l'attente
+     */
+    public void submitMessage(ChatMessage message) throws InterruptedException {
+        message.setAudienceSequence(getJoinSequence());
+        pipeline.submit(message);
+    }
+
+    private synchronized long getJoinSequence() {
+        return joinSequence;
     }
 
     /**
@@ -91,12 +154,14 @@ public class ChatServer {
     }
 
     /**
-     * Ajoute un nouveau gestionnaire de client à la liste des clients connectés.
+     * Ajoute un nouveau gestionnaire de client à la liste des clients connectés
+     * et lui attribue un numéro d'arrivée croissant.
      * Cette méthode est synchronisée pour éviter les modifications concurrentes.
      * 
      * @param client Le ClientHandler à ajouter
      */
     public synchronized void addClient(ClientHandler client) {
+        client.setJoinSequence(++joinSequence);
         clientHandlers.add(client);
     }
 
@@ -137,19 +202,36 @@ public class ChatServer {
     }
 
     /**
-     * Diffuse un message à tous les clients connectés sauf l'expéditeur.
-     * Cette méthode est naturellement synchronisée pour éviter les envois
-     * de messages concurrents.
+     * Recherche un client connecté par son pseudonyme (insensible à la casse).
+     * 
+     * @param pseudo Le pseudonyme recherché
+     * @return Le ClientHandler correspondant, ou null si aucun client n'a ce pseudonyme
+     */
+    public synchronized ClientHandler findClient(String pseudo) {
+        for (ClientHandler client : clientHandlers) {
+            if (client.getPseudo() != null && client.getPseudo().equalsIgnoreCase(pseudo)) {
+                return client;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Construit le message listant les participants actuels.
      * 
-     * @param message Le message à diffuser
-     * @param sender Le ClientHandler du client envoyant le message (à exclure)
+     * @return Le message "Participants actuels : ..."
      */
-    public synchronized void broadcastMessage(String message, ClientHandler sender) {
+    public synchronized String getParticipantsList() {
+        StringBuilder participants = new StringBuilder("Participants actuels : ");
+        boolean first = true;
         for (ClientHandler client : clientHandlers) {
-            if (client != sender) {
-                client.sendMessage(message);
+            if (!first) {
+                participants.append(", ");
             }
+            participants.append(client.getPseudo());
+            first = false;
         }
+        return participants.toString();
     }
 
     /**
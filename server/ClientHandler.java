@@ -5,6 +5,7 @@ import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.IOException;
 import java.net.Socket;
+import java.util.List;
 
 /**
  * ClientHandler est un thread qui gère la communication avec un client unique.
@@ -12,13 +13,17 @@ import java.net.Socket;
  * 
  * Cette classe travaille en tandem avec ChatServer :
  * - ClientHandler gère la communication individuelle avec un client
- * - ChatServer gère la liste des clients et la diffusion des messages
+ * - ChatServer gère la liste des clients et possède le MessagePipeline
+ * - MessagePipeline traite les messages et les envoie à leurs destinataires
  * 
  * Le flux de communication est le suivant :
  * 1. ClientHandler reçoit un message du client
- * 2. Le message est transmis à ChatServer pour diffusion
- * 3. ChatServer diffuse le message à tous les autres clients
- * 4. Chaque ClientHandler envoie le message à son client respectif
+ * 2. Le message est soumis au MessagePipeline de ChatServer
+ * 3. Le pipeline traite le message (commandes, filtres) et détermine ses destinataires
+ * 4. Le pipeline envoie le message via le ClientHandler de chaque destinataire
+ * 
+ * Le thread du ClientHandler ne fait donc que lire les messages : leur traitement
+ * se fait sur les threads du pipeline.
  * 
  * Note sur l'utilisation de 'final' :
  * - clientSocket : garantit que la connexion socket reste la même
@@ -30,6 +35,7 @@ public class ClientHandler extends Thread {
     private BufferedReader in;
     private String pseudo;
     private final ChatServer server;
+    private long joinSequence;
 
     /**
      * Constructeur de ClientHandler.
@@ -53,13 +59,29 @@ public class ClientHandler extends Thread {
     }
 
     /**
-     * Envoie un message au client associé à ce gestionnaire.
-     * Utilise le flux de sortie du client pour envoyer les données.
+     * @return Le numéro d'arrivée attribué par ChatServer.addClient
+     */
+    long getJoinSequence() {
+        return joinSequence;
+    }
+
+    void setJoinSequence(long joinSequence) {
+        this.joinSequence = joinSequence;
+    }
+
+    /**
+     * Envoie plusieurs messages au client en une seule écriture.
+     * Utilisé par le pipeline pour envoyer un lot de messages à ce client.
      * 
-     * @param message Le message à envoyer
+     * @param messages Les messages à envoyer, dans l'ordre
      */
-    public void sendMessage(String message) {
-        out.println(message);
+    public void sendMessages(List<String> messages) {
+        StringBuilder batch = new StringBuilder();
+        for (String message : messages) {
+            batch.append(message).append(System.lineSeparator());
+        }
+        out.print(batch.toString());
+        out.flush();
     }
 
     /**
@@ -78,7 +100,7 @@ public class ClientHandler extends Thread {
      * 4. Ajoute ce client à la liste du serveur
      * 5. Entre dans une boucle pour :
      *    - Lire les messages du client
-     *    - Les diffuser aux autres clients
+     *    - Les soumettre au pipeline pour traitement et diffusion
      *    - Gérer la déconnexion
      */
     @Override
@@ -107,43 +129,40 @@ public class ClientHandler extends Thread {
             // Log dans la console du serveur uniquement
             System.out.println("Nouvel utilisateur connecté: " + pseudo);
             
-            // Annonce à tous les autres clients (broadcast) qu'un nouveau client est arrivé
-            server.broadcastMessage("Utilisateur " + pseudo + " a rejoint la conversation.", this);
+            // Annonce à tous les autres clients qu'un nouveau client est arrivé.
+            // L'annonce passe par le pipeline, comme celle de départ, pour rester dans l'ordre
+            server.submitMessage(ChatMessage.system(this, "Utilisateur " + pseudo + " a rejoint la conversation."));
             
             // Message de bienvenue envoyé uniquement au nouveau client
             out.println("Bienvenue dans le chat, " + pseudo + "!");
 
             // Afficher la liste des participants
-            StringBuilder participants = new StringBuilder("Participants actuels : ");
-            boolean first = true;
-            for (ClientHandler client : server.getClientHandlers()) {
-                if (!first) {
-                    participants.append(", ");
-                }
-                participants.append(client.getPseudo());
-                first = false;
-            }
-            out.println(participants.toString());
+            out.println(server.getParticipantsList());
 
             String message;
             // Écoute les messages du client
             while ((message = in.readLine()) != null) {
                 if (message.equalsIgnoreCase("exit")) {
                     out.println("Vous avez été déconnecté du serveur.");
-                    server.broadcastMessage("Utilisateur " + pseudo + " a quitté la conversation.", this);
+                    announceDeparture();
                     break;
                 }
-                server.broadcastMessage(pseudo + ": " + message, this);
+                server.submitMessage(ChatMessage.fromClient(this, message));
             }
 
             // Si on sort de la boucle sans un "exit" du client (message == null signifie déconnexion)
             if (message == null) {
-                server.broadcastMessage("Utilisateur " + pseudo + " a quitté la conversation.", this);
+                announceDeparture();
             }
         } catch (IOException e) {
             // Gère les erreurs inattendues (ex: client déconnecté de force)
             System.err.println("Erreur de communication avec " + pseudo + ": " + e.getMessage());
-            server.broadcastMessage("Utilisateur " + pseudo + " a quitté la conversation.", this);
+            announceDeparture();
+        } catch (InterruptedException e) {
+            // Le thread a été interrompu en attendant de la place dans le pipeline.
+            // L'interruption est rétablie après l'annonce, sinon celle-ci échouerait aussitôt
+            announceDeparture();
+            Thread.currentThread().interrupt();
         } finally {
             // Retire ce client de la liste et ferme les ressources
             if (pseudo != null) {
@@ -159,4 +178,17 @@ public class ClientHandler extends Thread {
             } catch (IOException ex) { /* Ignore close errors */ }
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * Annonce aux autres clients que ce client a quitté la conversation.
+     * L'annonce passe par le pipeline pour être diffusée après les derniers
+     * messages de ce client encore en cours de traitement.
+     */
+    private void announceDeparture() {
+        try {
+            server.submitMessage(ChatMessage.system(this, "Utilisateur " + pseudo + " a quitté la conversation."));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package server;
+
+/**
+ * MessageFilter est l'interface des plugins de la chaîne de filtres du pipeline.
+ * Les filtres sont appelés dans leur ordre d'enregistrement, pour chaque
+ * message client (les messages système ne sont pas filtrés).
+ *
+ * Un filtre peut modifier le texte du message (ex: masquer des mots interdits)
+ * ou le rejeter en retournant false, auquel cas les filtres suivants ne sont
+ * pas appelés et le message n'est pas diffusé.
+ *
+ * Les filtres sont appelés depuis les threads du pipeline : ils doivent être
+ * thread-safe et éviter les opérations bloquantes.
+ */
+@FunctionalInterface
+public interface MessageFilter {
+
+    /**
+     * Filtre un message.
+     *
+     * @param message Le message à filtrer (modifiable)
+     * @return true pour laisser passer le message, false pour le rejeter
+     */
+    boolean filter(ChatMessage message);
+}
@@ -0,0 +1,255 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * MessagePipeline traite les messages des clients en dehors des threads ClientHandler.
+ *
+ * Le pipeline est composé de cinq étapes, chacune avec ses propres threads,
+ * reliées par des files bornées :
+ * 1. decode : retire les caractères de contrôle (sauf les tabulations) et repère les commandes ("/nom args")
+ * 2. command : exécute les commandes enregistrées (ChatCommand)
+ * 3. filter : applique la chaîne de filtres enregistrés (MessageFilter)
+ * 4. route : détermine les destinataires du message
+ * 5. encode : formate les messages et les envoie, regroupés par destinataire
+ *
+ * Les messages sont traités par lots : par exemple, l'étape route ne récupère
+ * qu'une seule fois la liste des clients pour tout un lot, et l'étape encode
+ * n'écrit qu'une seule fois sur le socket de chaque destinataire.
+ *
+ * Les messages d'un même client restent dans l'ordre d'envoi (voir PipelineStage).
+ * Les temps d'attente et de traitement de chaque file de chaque étape sur le dernier intervalle
+ * sont journalisés périodiquement dans la console du serveur (voir StageMetrics).
+ */
+public class MessagePipeline {
+
+    /** Nombre de threads de chaque étape. */
+    private static final int THREADS_PER_STAGE = 2;
+
+    /** Capacité de la file de chaque thread d'étape. */
+    private static final int QUEUE_CAPACITY = 1024;
+
+    /** Nombre maximal de messages traités en un lot. */
+    private static final int MAX_BATCH_SIZE = 64;
+
+    /** Intervalle de journalisation des mesures, en secondes. */
+    private static final long METRICS_INTERVAL_SECONDS = 60;
+
+    /** Caractères de contrôle retirés des messages clients (les tabulations sont conservées). */
+    private static final Pattern CONTROL_CHARACTERS = Pattern.compile("[\\p{Cntrl}&&[^\\t]]");
+
+    /** Séparateur entre le nom d'une commande et ses arguments. */
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final ChatServer server;
+    private final Map<String, ChatCommand> commands;
+    private final List<MessageFilter> filters;
+    private final List<PipelineStage> stages;
+
+    /**
+     * Constructeur de MessagePipeline. Crée et démarre les threads de chaque étape.
+     * Ces threads sont des démons : ils tournent aussi longtemps que le serveur
+     * et s'arrêtent avec lui.
+     *
+     * @param server L'instance du serveur dont les clients reçoivent les messages
+     */
+    public MessagePipeline(ChatServer server) {
+        this.server = server;
+        this.commands = new ConcurrentHashMap<>();
+        this.filters = new CopyOnWriteArrayList<>();
+        this.stages = new ArrayList<>();
+        stages.add(new PipelineStage("decode", THREADS_PER_STAGE, QUEUE_CAPACITY, MAX_BATCH_SIZE, this::decode));
+        stages.add(new PipelineStage("command", THREADS_PER_STAGE, QUEUE_CAPACITY, MAX_BATCH_SIZE, this::dispatchCommands));
+        stages.add(new PipelineStage("filter", THREADS_PER_STAGE, QUEUE_CAPACITY, MAX_BATCH_SIZE, this::applyFilters));
+        stages.add(new PipelineStage("route", THREADS_PER_STAGE, QUEUE_CAPACITY, MAX_BATCH_SIZE, this::route));
+        stages.add(new PipelineStage("encode", THREADS_PER_STAGE, QUEUE_CAPACITY, MAX_BATCH_SIZE, this::encode));
+        for (int i = 0; i < stages.size() - 1; i++) {
+            stages.get(i).setNext(stages.get(i + 1));
+        }
+
+        ScheduledExecutorService metricsReporter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "pipeline-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        metricsReporter.scheduleAtFixedRate(this::reportMetrics,
+                METRICS_INTERVAL_SECONDS, METRICS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Enregistre une commande. Un message "/nom args" déclenchera cette commande.
+     * Une commande déjà enregistrée sous ce nom est remplacée.
+     *
+     * @param name Le nom de la commande, sans le '/' (insensible à la casse)
+     * @param command La commande à exécuter
+     */
+    public void registerCommand(String name, ChatCommand command) {
+        commands.put(name.toLowerCase(Locale.ROOT), command);
+    }
+
+    /**
+     * Ajoute un filtre à la fin de la chaîne de filtres.
+     *
+     * @param filter Le filtre à ajouter
+     */
+    public void addFilter(MessageFilter filter) {
+        filters.add(filter);
+    }
+
+    /**
+     * Soumet un message au pipeline. Bloque si la première étape est saturée.
+     * Les messages sont soumis via ChatServer.submitMessage, qui fixe leur audience.
+     *
+     * @param message Le message à traiter
+     * @throws InterruptedException Si le thread est interrompu pendant l'attente
+     */
+    void submit(ChatMessage message) throws InterruptedException {
+        stages.get(0).submit(message);
+    }
+
+    /**
+     * Étape decode : retire les caractères de contrôle des messages clients,
+     * sauf les tabulations, et repère les commandes.
+     */
+    private void decode(List<ChatMessage> batch) {
+        for (ChatMessage message : batch) {
+            if (message.isSystem()) {
+                continue;
+            }
+            String text = CONTROL_CHARACTERS.matcher(message.getText()).replaceAll("");
+            message.setText(text);
+            if (text.startsWith("/") && text.length() > 1) {
+                String[] parts = WHITESPACE.split(text.substring(1), 2);
+                message.setCommand(parts[0].toLowerCase(Locale.ROOT), parts.length > 1 ? parts[1] : "");
+            }
+        }
+    }
+
+    /**
+     * Étape command : exécute la commande de chaque message.
+     * Un message dont la commande est inconnue est diffusé comme un message normal.
+     * Si une commande échoue, seul son expéditeur en est informé : les autres
+     * messages du lot sont traités normalement.
+     */
+    private void dispatchCommands(List<ChatMessage> batch) {
+        for (ChatMessage message : batch) {
+            if (message.getCommand() == null) {
+                continue;
+            }
+            ChatCommand command = commands.get(message.getCommand());
+            if (command == null) {
+                continue;
+            }
+            try {
+                command.execute(message, message.getCommandArgs());
+            } catch (RuntimeException e) {
+                System.err.println("Erreur dans la commande /" + message.getCommand() + ": " + e);
+                message.replyToSender("Erreur lors de l'exécution de la commande /" + message.getCommand() + ".");
+            }
+        }
+    }
+
+    /**
+     * Étape filter : applique la chaîne de filtres aux messages clients.
+     * Un message dont un filtre échoue est abandonné, sans affecter les autres messages du lot.
+     */
+    private void applyFilters(List<ChatMessage> batch) {
+        if (filters.isEmpty()) {
+            return;
+        }
+        for (ChatMessage message : batch) {
+            if (message.isSystem()) {
+                continue;
+            }
+            for (MessageFilter filter : filters) {
+                boolean accepted;
+                try {
+                    accepted = filter.filter(message);
+                } catch (RuntimeException e) {
+                    System.err.println("Erreur dans un filtre de messages: " + e);
+                    accepted = false;
+                }
+                if (!accepted) {
+                    message.drop();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Étape route : diffuse à tous les clients sauf l'expéditeur, ou restreint
+     * les destinataires explicites à ceux encore connectés. Dans les deux cas,
+     * les clients arrivés après la soumission du message sont exclus (par exemple
+     * un client qui se reconnecte ne reçoit pas l'annonce de son propre départ).
+     */
+    private void route(List<ChatMessage> batch) {
+        Set<ClientHandler> connected = server.getClientHandlers();
+        for (ChatMessage message : batch) {
+            Set<ClientHandler> explicit = message.getRecipients();
+            Set<ClientHandler> recipients = new HashSet<>();
+            for (ClientHandler client : explicit == null ? connected : explicit) {
+                boolean addressed = explicit != null || client != message.getSender();
+                if (addressed && connected.contains(client)
+                        && client.getJoinSequence() <= message.getAudienceSequence()) {
+                    recipients.add(client);
+                }
+            }
+            message.setRecipients(recipients);
+        }
+    }
+
+    /**
+     * Étape encode : formate les messages ("pseudo: texte" pour les messages clients)
+     * et les envoie en une seule écriture par destinataire.
+     */
+    private void encode(List<ChatMessage> batch) {
+        Map<ClientHandler, List<String>> outgoing = new LinkedHashMap<>();
+        for (ChatMessage message : batch) {
+            String line = message.isSystem()
+                    ? message.getText()
+                    : message.getSender().getPseudo() + ": " + message.getText();
+            for (ClientHandler recipient : message.getRecipients()) {
+                outgoing.computeIfAbsent(recipient, client -> new ArrayList<>()).add(line);
+            }
+        }
+        for (Map.Entry<ClientHandler, List<String>> entry : outgoing.entrySet()) {
+            entry.getKey().sendMessages(entry.getValue());
+        }
+    }
+
+    /**
+     * Journalise les mesures de chaque file de chaque étape sur le dernier intervalle,
+     * si des messages ont été traités pendant cet intervalle.
+     */
+    private void reportMetrics() {
+        List<StageMetrics> interval = new ArrayList<>();
+        long count = 0;
+        for (PipelineStage stage : stages) {
+            for (StageMetrics lane : stage.getLaneMetrics()) {
+                StageMetrics metrics = lane.snapshotAndReset();
+                count += metrics.getMessageCount();
+                interval.add(metrics);
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        System.out.println("Mesures du pipeline de messages (" + METRICS_INTERVAL_SECONDS + " dernières secondes) :");
+        for (StageMetrics metrics : interval) {
+            System.out.println("  " + metrics);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * PipelineStage est une étape du pipeline de messages, avec ses propres threads.
+ *
+ * L'étape est découpée en files (lanes) : chaque file bornée est vidée par son
+ * propre thread, nommé "pipeline-<étape>-<numéro>". Un message est placé
+ * dans la file choisie selon le pseudonyme de son expéditeur : les messages d'un
+ * même pseudonyme sont donc toujours traités par le même thread, ce qui conserve
+ * leur ordre. Cela vaut aussi d'une connexion à l'autre : si un client se
+ * reconnecte avec le même pseudonyme, l'annonce de son arrivée suit celle de
+ * son départ.
+ *
+ * Chaque thread traite les messages par lots : il attend un premier message,
+ * puis récupère d'un coup ceux déjà en attente (jusqu'à maxBatchSize). Les
+ * messages non abandonnés sont ensuite transmis à l'étape suivante.
+ *
+ * Les files étant bornées, une étape trop lente bloque l'étape précédente,
+ * et en bout de chaîne le ClientHandler qui soumet les messages.
+ */
+class PipelineStage {
+
+    /**
+     * Traitement appliqué par une étape à chaque lot de messages.
+     */
+    @FunctionalInterface
+    interface Processor {
+        void process(List<ChatMessage> batch);
+    }
+
+    private final String name;
+    private final Processor processor;
+    private final int maxBatchSize;
+    private final List<Lane> lanes;
+    private volatile PipelineStage next;
+
+    /**
+     * Une file de l'étape, avec les mesures de son thread.
+     */
+    private static class Lane {
+        final BlockingQueue<ChatMessage> queue;
+        final StageMetrics metrics;
+
+        Lane(int capacity, String name) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.metrics = new StageMetrics(name);
+        }
+    }
+
+    /**
+     * Constructeur de PipelineStage. Les threads (démons) de l'étape sont démarrés
+     * immédiatement et tournent aussi longtemps que le serveur.
+     *
+     * @param name Le nom de l'étape (utilisé pour les threads et les mesures)
+     * @param threads Le nombre de threads (et donc de files) de l'étape
+     * @param queueCapacity La capacité de la file de chaque thread
+     * @param maxBatchSize Le nombre maximal de messages traités en un lot
+     * @param processor Le traitement appliqué à chaque lot
+     */
+    PipelineStage(String name, int threads, int queueCapacity, int maxBatchSize, Processor processor) {
+        this.name = name;
+        this.processor = processor;
+        this.maxBatchSize = maxBatchSize;
+        this.lanes = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Lane lane = new Lane(queueCapacity, name + "-" + i);
+            lanes.add(lane);
+            Thread thread = new Thread(() -> drain(lane), "pipeline-" + name + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Définit l'étape qui reçoit les messages après celle-ci.
+     * Doit être appelée avant la première soumission.
+     *
+     * @param next L'étape suivante
+     */
+    void setNext(PipelineStage next) {
+        this.next = next;
+    }
+
+    /**
+     * Place un message dans la file de l'étape, en attendant qu'il y ait de la place.
+     *
+     * @param message Le message à traiter
+     * @throws InterruptedException Si le thread est interrompu pendant l'attente
+     */
+    void submit(ChatMessage message) throws InterruptedException {
+        int index = Math.floorMod(pseudoHash(message.getSender().getPseudo()), lanes.size());
+        message.markEnqueued();
+        lanes.get(index).queue.put(message);
+    }
+
+    /**
+     * Calcule un hash du pseudonyme insensible à la casse, cohérent avec
+     * String.equalsIgnoreCase utilisé par ChatServer pour comparer les pseudonymes :
+     * deux pseudonymes considérés identiques vont toujours dans la même file.
+     * Chaque caractère est normalisé comme dans equalsIgnoreCase, indépendamment
+     * de la locale par défaut (String.toLowerCase dépend de la locale, ex: 'I' en turc).
+     *
+     * @param pseudo Le pseudonyme, éventuellement null
+     * @return Le hash du pseudonyme
+     */
+    private static int pseudoHash(String pseudo) {
+        if (pseudo == null) {
+            return 0;
+        }
+        int hash = 0;
+        for (int i = 0; i < pseudo.length(); i++) {
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(pseudo.charAt(i)));
+        }
+        return hash;
+    }
+
+    /**
+     * Retourne les mesures de chaque file de l'étape : une file saturée par un
+     * client très actif reste ainsi visible même si les autres sont inactives.
+     *
+     * @return Les mesures par file, dans l'ordre des files
+     */
+    List<StageMetrics> getLaneMetrics() {
+        List<StageMetrics> metrics = new ArrayList<>(lanes.size());
+        for (Lane lane : lanes) {
+            metrics.add(lane.metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * Boucle d'un thread de l'étape : récupère un lot, le traite, mesure
+     * les temps et transmet les messages à l'étape suivante.
+     *
+     * Une erreur (y compris une Error) dans le traitement d'un lot est journalisée
+     * et le lot est abandonné, sans arrêter le thread : sinon sa file se remplirait
+     * et bloquerait définitivement les clients qui y soumettent des messages.
+     */
+    private void drain(Lane lane) {
+        BlockingQueue<ChatMessage> queue = lane.queue;
+        List<ChatMessage> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatchSize - 1);
+
+                long start = System.nanoTime();
+                long totalWait = 0;
+                long longestWait = 0;
+                for (ChatMessage message : batch) {
+                    long wait = start - message.getEnqueuedAt();
+                    totalWait += wait;
+                    longestWait = Math.max(longestWait, wait);
+                }
+                int batchSize = batch.size();
+                try {
+                    processor.process(batch);
+                } catch (Throwable e) {
+                    // Dernier recours : les commandes et filtres sont déjà isolés message par message
+                    System.err.println("Erreur dans l'étape " + name + " du pipeline: " + e);
+                    batch.clear();
+                }
+                lane.metrics.record(batchSize, totalWait, longestWait, System.nanoTime() - start);
+
+                if (next != null) {
+                    for (ChatMessage message : batch) {
+                        if (!message.isDropped()) {
+                            next.submit(message);
+                        }
+                    }
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
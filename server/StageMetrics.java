@@ -0,0 +1,120 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * StageMetrics regroupe les mesures de latence d'une file (lane) d'une étape
+ * du pipeline, nommée "<étape>-<numéro>" (ex: "filter-1").
+ *
+ * Deux temps sont mesurés pour chaque message :
+ * - l'attente : temps passé dans la file avant d'être traité
+ * - le traitement : temps passé par le thread de la file à traiter le lot du message
+ *
+ * Les mesures couvrent un intervalle : snapshotAndReset() retourne les mesures
+ * accumulées depuis l'appel précédent et remet les compteurs à zéro. Une file
+ * dont le temps d'attente grandit d'un intervalle à l'autre est le goulot
+ * d'étranglement : son thread ne traite pas les messages aussi vite qu'ils arrivent.
+ *
+ * Les compteurs sont atomiques car ils sont mis à jour par le thread de la file
+ * et remis à zéro par le thread de journalisation.
+ */
+class StageMetrics {
+    private final String laneName;
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder serviceNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong maxBatchNanos = new AtomicLong();
+
+    StageMetrics(String laneName) {
+        this.laneName = laneName;
+    }
+
+    private StageMetrics(String laneName, long messages, long batches,
+                         long waitNanos, long maxWaitNanos, long serviceNanos, long maxBatchNanos) {
+        this.laneName = laneName;
+        this.messages.add(messages);
+        this.batches.add(batches);
+        this.waitNanos.add(waitNanos);
+        this.maxWaitNanos.set(maxWaitNanos);
+        this.serviceNanos.add(serviceNanos);
+        this.maxBatchNanos.set(maxBatchNanos);
+    }
+
+    /**
+     * Retourne les mesures accumulées depuis l'appel précédent et remet les
+     * compteurs à zéro. Un lot enregistré pendant l'appel peut être compté
+     * en partie dans cet intervalle et en partie dans le suivant.
+     *
+     * @return Les mesures du dernier intervalle
+     */
+    StageMetrics snapshotAndReset() {
+        return new StageMetrics(laneName, messages.sumThenReset(), batches.sumThenReset(),
+                waitNanos.sumThenReset(), maxWaitNanos.getAndSet(0),
+                serviceNanos.sumThenReset(), maxBatchNanos.getAndSet(0));
+    }
+
+    /**
+     * Enregistre le traitement d'un lot.
+     *
+     * @param batchSize Le nombre de messages du lot
+     * @param totalWaitNanos La somme des temps d'attente en file des messages du lot
+     * @param longestWaitNanos Le plus long temps d'attente en file d'un message du lot
+     * @param batchNanos Le temps de traitement du lot
+     */
+    void record(int batchSize, long totalWaitNanos, long longestWaitNanos, long batchNanos) {
+        messages.add(batchSize);
+        batches.increment();
+        waitNanos.add(totalWaitNanos);
+        maxWaitNanos.accumulateAndGet(longestWaitNanos, Math::max);
+        serviceNanos.add(batchNanos);
+        maxBatchNanos.accumulateAndGet(batchNanos, Math::max);
+    }
+
+    long getMessageCount() {
+        return messages.sum();
+    }
+
+    long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return Le temps moyen d'attente en file par message, en millisecondes
+     */
+    double getAverageWaitMillis() {
+        long count = messages.sum();
+        return count == 0 ? 0 : waitNanos.sum() / 1_000_000.0 / count;
+    }
+
+    /**
+     * @return Le plus long temps d'attente en file d'un message, en millisecondes
+     */
+    double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * @return Le temps moyen de traitement par message, en millisecondes
+     */
+    double getAverageServiceMillis() {
+        long count = messages.sum();
+        return count == 0 ? 0 : serviceNanos.sum() / 1_000_000.0 / count;
+    }
+
+    /**
+     * @return Le temps de traitement du lot le plus lent, en millisecondes
+     */
+    double getMaxBatchMillis() {
+        return maxBatchNanos.get() / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-9s : %d messages en %d lots, attente moy. %.3f ms (max %.3f ms), traitement moy. %.3f ms/msg, lot max %.3f ms",
+                laneName, getMessageCount(), getBatchCount(), getAverageWaitMillis(), getMaxWaitMillis(),
+                getAverageServiceMillis(), getMaxBatchMillis());
+    }
+}